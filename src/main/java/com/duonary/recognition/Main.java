@@ -2,6 +2,7 @@ package com.duonary.recognition;
 
 import com.duonary.recognition.network.MLPNetwork;
 import com.duonary.recognition.network.MLPNetworkOptimized;
+import com.duonary.recognition.util.MathUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,14 +55,7 @@ public class Main {
         for (Image image : dataset) {
             double[] input = transformInput(image);
             double[] output = networkOptimized.predict(input);
-            int predicted = 0;
-            double max = output[0];
-            for (int j = 1; j < output.length; j++) {
-                if (output[j] > max) {
-                    max = output[j];
-                    predicted = j;
-                }
-            }
+            int predicted = MathUtil.argmax(output);
             if (predictionMap.containsKey(predicted)) {
                 predictionMap.put(predicted, predictionMap.get(predicted) + 1);
             } else {
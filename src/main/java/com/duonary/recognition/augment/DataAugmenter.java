@@ -0,0 +1,414 @@
+package com.duonary.recognition.augment;
+
+import com.duonary.recognition.network.MLPNetworkOptimized;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Generates randomly shifted, rotated, scaled and elastically distorted copies of the training images while the
+// network trains, instead of materializing an augmented dataset. Worker threads fill a ring of preallocated chunk
+// buffers ahead of the trainer; every sample draws its randomness from (seed, epoch, position), so a run is
+// reproducible regardless of how the chunks were scheduled.
+public class DataAugmenter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataAugmenter.class);
+    private static final int ELASTIC_FIELDS = 64;
+
+    private final double maxShift;
+    private final double maxRotation;
+    private final double minScale;
+    private final double maxScale;
+    private final double elasticAlpha;
+    private final double elasticSigma;
+    private final int workers;
+    private final int prefetch;
+    private final int batchesPerChunk;
+    private final long seed;
+
+    private final Object lock = new Object();
+    private Throwable failure;
+
+    private DataAugmenter(Builder builder) {
+        this.maxShift = builder.maxShift;
+        this.maxRotation = Math.toRadians(builder.maxRotation);
+        this.minScale = builder.minScale;
+        this.maxScale = builder.maxScale;
+        this.elasticAlpha = builder.elasticAlpha;
+        this.elasticSigma = builder.elasticSigma;
+        this.workers = builder.workers;
+        this.prefetch = builder.prefetch;
+        this.batchesPerChunk = builder.batchesPerChunk;
+        this.seed = builder.seed;
+    }
+
+    public static DataAugmenter.Builder builder() {
+        return new DataAugmenter.Builder();
+    }
+
+    public static class Builder {
+        private double maxShift;
+        private double maxRotation;
+        private double minScale;
+        private double maxScale;
+        private double elasticAlpha;
+        private double elasticSigma;
+        private int workers;
+        private int prefetch;
+        private int batchesPerChunk;
+        private long seed;
+
+        public Builder() {
+            this.maxShift = 2;
+            this.maxRotation = 10;
+            this.minScale = 0.9;
+            this.maxScale = 1.1;
+            this.elasticAlpha = 0;
+            this.elasticSigma = 4;
+            this.workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            this.prefetch = 2 * this.workers;
+            this.batchesPerChunk = 8;
+            this.seed = System.nanoTime();
+        }
+
+        // In pixels
+        public Builder setMaxShift(double maxShift) {
+            this.maxShift = maxShift;
+            return this;
+        }
+
+        // In degrees
+        public Builder setMaxRotation(double maxRotation) {
+            this.maxRotation = maxRotation;
+            return this;
+        }
+
+        public Builder setScaleRange(double min, double max) {
+            this.minScale = min;
+            this.maxScale = max;
+            return this;
+        }
+
+        // Displacement strength and smoothness as in Simard et al. (alpha 34, sigma 4 for MNIST); alpha 0 disables it
+        public Builder setElasticDistortion(double alpha, double sigma) {
+            this.elasticAlpha = alpha;
+            this.elasticSigma = sigma;
+            return this;
+        }
+
+        public Builder setWorkers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        // Number of chunk buffers the workers may fill ahead of the trainer
+        public Builder setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        // Chunk size in network batches; chunks always hold whole batches so their buffers can be reused safely
+        public Builder setBatchesPerChunk(int batchesPerChunk) {
+            this.batchesPerChunk = batchesPerChunk;
+            return this;
+        }
+
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public DataAugmenter build() {
+            if (maxShift < 0 || maxRotation < 0 || elasticAlpha < 0)
+                throw new IllegalStateException("Augmentation ranges must not be negative");
+            if (minScale <= 0 || maxScale < minScale)
+                throw new IllegalStateException("Invalid scale range");
+            if (elasticAlpha > 0 && elasticSigma <= 0)
+                throw new IllegalStateException("Elastic sigma must be positive");
+            if (workers < 1 || prefetch < 1 || batchesPerChunk < 1)
+                throw new IllegalStateException("Workers, prefetch and batches per chunk must be positive");
+            return new DataAugmenter(this);
+        }
+    }
+
+    private static class Chunk {
+        final double[][] inputs;
+        final double[][] labels;
+        int count;
+        int readyFor;
+        int freeFor;
+
+        Chunk(int size, int inputSize, int slot) {
+            this.inputs = new double[size][inputSize];
+            this.labels = new double[size][];
+            this.readyFor = -1;
+            this.freeFor = slot;
+        }
+    }
+
+    // The last partial network batch of each epoch is dropped; the shuffle decides which samples that hits.
+    public void train(MLPNetworkOptimized network, double[][] inputs, double[][] labels, int epochs) {
+        int inputSize = inputs[0].length;
+        int side = (int) Math.round(Math.sqrt(inputSize));
+        if (side * side != inputSize) {
+            throw new IllegalArgumentException("Inputs are not square images: " + inputSize);
+        }
+        int networkBatch = network.getBatchSize();
+        int epochSize = inputs.length - inputs.length % networkBatch;
+        if (epochSize == 0) {
+            throw new IllegalArgumentException("Fewer samples than one batch");
+        }
+        int chunkSize = networkBatch * batchesPerChunk;
+        int chunksPerEpoch = (epochSize + chunkSize - 1) / chunkSize;
+        int totalChunks = chunksPerEpoch * epochs;
+
+        int[][] order = new int[epochs][];
+        for (int e = 0; e < epochs; e++) {
+            order[e] = shuffle(inputs.length, new Random(seed + e));
+        }
+        double[][] baseGrid = baseGrid(side);
+        float[][][] elasticFields = elasticAlpha > 0 ? elasticFields(side) : null;
+        Chunk[] ring = new Chunk[prefetch];
+        for (int i = 0; i < prefetch; i++) {
+            ring[i] = new Chunk(chunkSize, inputSize, i);
+        }
+        failure = null;
+
+        // Chunk rows are only safe to recycle when every network batch starts at a chunk boundary
+        int discarded = network.discardPartialBatch();
+        if (discarded > 0) {
+            LOG.info("Discarded {} samples of an incomplete batch from earlier training", discarded);
+        }
+
+        LOG.info("Training {} epochs of {} augmented samples on {} workers", epochs, epochSize, workers);
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                executor.submit(() -> {
+                    Sampler sampler = new Sampler(side, baseGrid, elasticFields);
+                    try {
+                        int k;
+                        while ((k = next.getAndIncrement()) < totalChunks) {
+                            Chunk chunk = ring[k % prefetch];
+                            if (!await(chunk, k, false)) {
+                                return;
+                            }
+                            int epoch = k / chunksPerEpoch;
+                            int start = (k % chunksPerEpoch) * chunkSize;
+                            chunk.count = Math.min(chunkSize, epochSize - start);
+                            for (int j = 0; j < chunk.count; j++) {
+                                int sample = order[epoch][start + j];
+                                sampler.augment(inputs[sample], chunk.inputs[j], epoch, start + j);
+                                chunk.labels[j] = labels[sample];
+                            }
+                            synchronized (lock) {
+                                chunk.readyFor = k;
+                                lock.notifyAll();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        synchronized (lock) {
+                            failure = t;
+                            lock.notifyAll();
+                        }
+                    }
+                });
+            }
+
+            for (int k = 0; k < totalChunks; k++) {
+                Chunk chunk = ring[k % prefetch];
+                if (!await(chunk, k, true)) {
+                    throw new IllegalStateException("Augmentation failed", failure);
+                }
+                int epoch = k / chunksPerEpoch;
+                network.trainSamples(chunk.inputs, chunk.labels, chunk.count, epoch, epochSize);
+                if (k % chunksPerEpoch == chunksPerEpoch - 1) {
+                    network.finishEpoch();
+                }
+                synchronized (lock) {
+                    chunk.freeFor = k + prefetch;
+                    lock.notifyAll();
+                }
+            }
+        } finally {
+            synchronized (lock) {
+                if (failure == null) {
+                    failure = new IllegalStateException("Training stopped");
+                }
+                lock.notifyAll();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean await(Chunk chunk, int k, boolean ready) {
+        synchronized (lock) {
+            while (failure == null && (ready ? chunk.readyFor : chunk.freeFor) != k) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return failure == null;
+        }
+    }
+
+    private static int[] shuffle(int size, Random random) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    // Pixel coordinates relative to the image center, shared by all samples
+    private static double[][] baseGrid(int side) {
+        double center = (side - 1) / 2.0;
+        double[][] grid = new double[2][side * side];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                grid[0][y * side + x] = x - center;
+                grid[1][y * side + x] = y - center;
+            }
+        }
+        return grid;
+    }
+
+    // A bank of smoothed random displacement fields; each sample picks one, so no field is generated while training
+    private float[][][] elasticFields(int side) {
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        int radius = (int) Math.ceil(3 * elasticSigma);
+        double[] kernel = new double[2 * radius + 1];
+        double kernelSum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            kernel[i + radius] = Math.exp(-(i * i) / (2 * elasticSigma * elasticSigma));
+            kernelSum += kernel[i + radius];
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= kernelSum;
+        }
+
+        float[][][] fields = new float[ELASTIC_FIELDS][2][side * side];
+        double[] noise = new double[side * side];
+        double[] rows = new double[side * side];
+        for (float[][] field : fields) {
+            for (float[] component : field) {
+                for (int i = 0; i < noise.length; i++) {
+                    noise[i] = random.nextDouble() * 2 - 1;
+                }
+                // Separable gaussian blur, zero outside the image
+                for (int y = 0; y < side; y++) {
+                    for (int x = 0; x < side; x++) {
+                        double sum = 0;
+                        for (int k = -radius; k <= radius; k++) {
+                            int xx = x + k;
+                            if (xx >= 0 && xx < side) sum += kernel[k + radius] * noise[y * side + xx];
+                        }
+                        rows[y * side + x] = sum;
+                    }
+                }
+                for (int y = 0; y < side; y++) {
+                    for (int x = 0; x < side; x++) {
+                        double sum = 0;
+                        for (int k = -radius; k <= radius; k++) {
+                            int yy = y + k;
+                            if (yy >= 0 && yy < side) sum += kernel[k + radius] * rows[yy * side + x];
+                        }
+                        component[y * side + x] = (float) (elasticAlpha * sum);
+                    }
+                }
+            }
+        }
+        return fields;
+    }
+
+    // Per-thread sampling state; augment() allocates nothing
+    private class Sampler {
+        private final int side;
+        private final double center;
+        private final double[][] baseGrid;
+        private final float[][][] elasticFields;
+        private long state;
+
+        Sampler(int side, double[][] baseGrid, float[][][] elasticFields) {
+            this.side = side;
+            this.center = (side - 1) / 2.0;
+            this.baseGrid = baseGrid;
+            this.elasticFields = elasticFields;
+        }
+
+        void augment(double[] source, double[] target, int epoch, int position) {
+            state = mix(seed + mix(((long) epoch << 32) | position));
+            double angle = (nextDouble() * 2 - 1) * maxRotation;
+            double scale = minScale + nextDouble() * (maxScale - minScale);
+            double shiftX = (nextDouble() * 2 - 1) * maxShift;
+            double shiftY = (nextDouble() * 2 - 1) * maxShift;
+            float[] fieldX = null;
+            float[] fieldY = null;
+            if (elasticFields != null) {
+                float[][] field = elasticFields[(int) (nextDouble() * elasticFields.length)];
+                boolean swap = nextDouble() < 0.5;
+                fieldX = swap ? field[1] : field[0];
+                fieldY = swap ? field[0] : field[1];
+            }
+
+            // Inverse mapping: every target pixel looks up where it came from in the source image
+            double cos = Math.cos(angle) / scale;
+            double sin = Math.sin(angle) / scale;
+            double[] gridX = baseGrid[0];
+            double[] gridY = baseGrid[1];
+            for (int i = 0; i < target.length; i++) {
+                double dx = gridX[i] - shiftX;
+                double dy = gridY[i] - shiftY;
+                double sx = cos * dx + sin * dy + center;
+                double sy = -sin * dx + cos * dy + center;
+                if (fieldX != null) {
+                    sx += fieldX[i];
+                    sy += fieldY[i];
+                }
+                target[i] = bilinear(source, sx, sy);
+            }
+        }
+
+        private double bilinear(double[] source, double x, double y) {
+            if (x <= -1 || y <= -1 || x >= side || y >= side) {
+                return 0;
+            }
+            int x0 = (int) Math.floor(x);
+            int y0 = (int) Math.floor(y);
+            double fx = x - x0;
+            double fy = y - y0;
+            double top = (1 - fx) * pixel(source, x0, y0) + fx * pixel(source, x0 + 1, y0);
+            double bottom = (1 - fx) * pixel(source, x0, y0 + 1) + fx * pixel(source, x0 + 1, y0 + 1);
+            return (1 - fy) * top + fy * bottom;
+        }
+
+        private double pixel(double[] source, int x, int y) {
+            return x < 0 || y < 0 || x >= side || y >= side ? 0 : source[y * side + x];
+        }
+
+        private double nextDouble() {
+            state += 0x9E3779B97F4A7C15L;
+            return (mix(state) >>> 11) * 0x1.0p-53;
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
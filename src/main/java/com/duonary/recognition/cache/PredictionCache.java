@@ -0,0 +1,176 @@
+package com.duonary.recognition.cache;
+
+import com.duonary.recognition.network.MLPNetworkOptimized;
+import com.duonary.recognition.util.MathUtil;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded LRU cache of predictions keyed by a 64-bit hash of the input values. A hit also compares the stored input
+// bit for bit, so neither hash collisions nor near-identical images (e.g. area-averaged scans) can share an entry.
+// The cache is split into independently locked segments, and it drops everything as soon as it sees a different
+// network or a network whose parameters have changed since the entries were computed.
+public class PredictionCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile MLPNetworkOptimized network;
+    private volatile long version;
+    private volatile int generation;
+
+    public PredictionCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, long invalidations, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private static final class Entry {
+        final double[] input;
+        final double[] probabilities;
+        final int label;
+        final int generation;
+
+        Entry(double[] input, double[] probabilities, int label, int generation) {
+            this.input = input;
+            this.probabilities = probabilities;
+            this.label = label;
+            this.generation = generation;
+        }
+    }
+
+    // Callers synchronize on the segment
+    private final class Segment {
+        private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        Entry get(long hash) {
+            return entries.get(hash);
+        }
+
+        void put(long hash, Entry entry) {
+            entries.put(hash, entry);
+            if (entries.size() > capacity) {
+                // Access order puts the least recently used entry first
+                Iterator<Entry> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        void clear() {
+            entries.clear();
+        }
+
+        int size() {
+            return entries.size();
+        }
+    }
+
+    // Returns a copy of the probabilities, so callers may modify it
+    public double[] predict(MLPNetworkOptimized network, double[] input) {
+        return lookup(network, input).probabilities.clone();
+    }
+
+    public int predictClass(MLPNetworkOptimized network, double[] input) {
+        return lookup(network, input).label;
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        invalidations.increment();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public Stats getStats() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size);
+    }
+
+    private Entry lookup(MLPNetworkOptimized network, double[] input) {
+        checkModel(network);
+        int currentGeneration = generation;
+        long hash = hash(input);
+        Segment segment = segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(hash);
+        }
+        if (entry != null && entry.generation == currentGeneration && Arrays.equals(entry.input, input)) {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+        double[] probabilities = network.predict(input);
+        int label = MathUtil.argmax(probabilities);
+        entry = new Entry(input.clone(), probabilities, label, currentGeneration);
+        if (currentGeneration == generation) {
+            synchronized (segment) {
+                segment.put(hash, entry);
+            }
+        }
+        return entry;
+    }
+
+    private void checkModel(MLPNetworkOptimized network) {
+        if (network == this.network && network.getVersion() == this.version) {
+            return;
+        }
+        synchronized (this) {
+            long currentVersion = network.getVersion();
+            if (network != this.network || currentVersion != this.version) {
+                if (this.network != null) {
+                    invalidate();
+                }
+                this.network = network;
+                this.version = currentVersion;
+            }
+        }
+    }
+
+    private static long hash(double[] input) {
+        long h = 0x9E3779B97F4A7C15L ^ input.length;
+        for (double value : input) {
+            h ^= Double.doubleToRawLongBits(value) * 0xC2B2AE3D27D4EB4FL;
+            h = Long.rotateLeft(h, 31) * 0x9E3779B97F4A7C15L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,140 @@
+package com.duonary.recognition.ingest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Turns an arbitrary scanned digit into the 28x28 layout of the MNIST files: white ink on black, the digit
+// fitted into a 20x20 box and shifted so its center of mass sits in the middle of the image.
+// Buffers are reused between calls, so an instance must only be used by one thread at a time.
+public class ImagePreprocessor {
+    public static final int SIZE = 28;
+    private static final int BOX = 20;
+    private static final int NOISE_THRESHOLD = 32;
+
+    private int[] row = new int[0];
+    private int[] gray = new int[0];
+    private final double[] box = new double[BOX * BOX];
+
+    public void preprocess(Path file, double[] output) throws IOException {
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        preprocess(image, output);
+    }
+
+    public void preprocess(BufferedImage image, double[] output) {
+        if (output.length != SIZE * SIZE) {
+            throw new IllegalArgumentException("Output must hold " + SIZE * SIZE + " pixels");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        toGrayscale(image, width, height);
+        Arrays.fill(output, 0);
+
+        // Bounding box of the ink, ignoring faint scanner noise
+        int top = height, bottom = -1, left = width, right = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (gray[i] < NOISE_THRESHOLD) {
+                    gray[i] = 0;
+                } else {
+                    top = Math.min(top, y);
+                    bottom = Math.max(bottom, y);
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                }
+            }
+        }
+        if (bottom < 0) {
+            return;
+        }
+
+        int boxWidth = right - left + 1;
+        int boxHeight = bottom - top + 1;
+        double scale = (double) BOX / Math.max(boxWidth, boxHeight);
+        int targetWidth = Math.clamp(Math.round(boxWidth * scale), 1, BOX);
+        int targetHeight = Math.clamp(Math.round(boxHeight * scale), 1, BOX);
+        resize(width, left, top, right, bottom, scale, targetWidth, targetHeight);
+
+        double mass = 0, sumX = 0, sumY = 0;
+        for (int y = 0; y < targetHeight; y++) {
+            for (int x = 0; x < targetWidth; x++) {
+                double v = box[y * BOX + x];
+                mass += v;
+                sumX += v * x;
+                sumY += v * y;
+            }
+        }
+        int offsetX = Math.clamp(Math.round(SIZE / 2.0 - sumX / mass), 0, SIZE - targetWidth);
+        int offsetY = Math.clamp(Math.round(SIZE / 2.0 - sumY / mass), 0, SIZE - targetHeight);
+        for (int y = 0; y < targetHeight; y++) {
+            for (int x = 0; x < targetWidth; x++) {
+                // Same scaling as the IDX pixels get in Main.transformInput
+                output[(offsetY + y) * SIZE + offsetX + x] = box[y * BOX + x] / 254.0;
+            }
+        }
+    }
+
+    // Luminance with alpha composited onto white paper, inverted when the background is light. The background level
+    // is the mean of the border pixels.
+    private void toGrayscale(BufferedImage image, int width, int height) {
+        if (row.length < width) {
+            row = new int[width];
+        }
+        if (gray.length < width * height) {
+            gray = new int[width * height];
+        }
+        long border = 0;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int alpha = argb >>> 24;
+                int luminance = (299 * ((argb >> 16) & 0xFF) + 587 * ((argb >> 8) & 0xFF) + 114 * (argb & 0xFF)) / 1000;
+                int value = (luminance * alpha + 255 * (255 - alpha)) / 255;
+                gray[y * width + x] = value;
+                if (y == 0 || y == height - 1 || x == 0 || x == width - 1) {
+                    border += value;
+                }
+            }
+        }
+        int borderCount = width * height - Math.max(0, width - 2) * Math.max(0, height - 2);
+        int background = (int) (border / borderCount);
+        boolean invert = background > 127;
+        if (invert) {
+            background = 255 - background;
+        }
+        // Take the paper's own level off, so an off-white or gray scan does not count as ink, and stretch what is
+        // left back to 0-255
+        int range = 255 - background;
+        for (int i = 0; i < width * height; i++) {
+            int value = invert ? 255 - gray[i] : gray[i];
+            gray[i] = Math.max(0, value - background) * 255 / range;
+        }
+    }
+
+    // Area average of the source pixels covered by each target pixel; works for both up- and downscaling
+    private void resize(int width, int left, int top, int right, int bottom, double scale, int targetWidth, int targetHeight) {
+        Arrays.fill(box, 0);
+        for (int ty = 0; ty < targetHeight; ty++) {
+            int y0 = Math.min(bottom, top + (int) (ty / scale));
+            int y1 = Math.min(bottom + 1, Math.max(y0 + 1, top + (int) Math.ceil((ty + 1) / scale)));
+            for (int tx = 0; tx < targetWidth; tx++) {
+                int x0 = Math.min(right, left + (int) (tx / scale));
+                int x1 = Math.min(right + 1, Math.max(x0 + 1, left + (int) Math.ceil((tx + 1) / scale)));
+                long sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        sum += gray[y * width + x];
+                    }
+                }
+                box[ty * BOX + tx] = (double) sum / ((y1 - y0) * (x1 - x0));
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.duonary.recognition.ingest;
+
+import com.duonary.recognition.cache.PredictionCache;
+import com.duonary.recognition.network.MLPNetworkOptimized;
+import com.duonary.recognition.util.MathUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Two ways in: predict(...) runs on the caller's thread for the lowest latency on single images, predictFolder(...)
+// decodes a whole folder on a worker pool and pushes each filled batch straight through the network.
+// For bulk folders, consider ImageIO.setUseCache(false) at startup: ImageIO's on-disk stream cache only slows down
+// decoding files that are already on disk. It is JVM-wide, so the pipeline leaves it to the application.
+public class IngestionPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    private final MLPNetworkOptimized network;
+    private final int workers;
+    private final int batchSize;
+    private final PredictionCache cache;
+    private final ThreadLocal<Worker> callerWorker;
+
+    public IngestionPipeline(MLPNetworkOptimized network, int workers, int batchSize) {
+        this(network, workers, batchSize, null);
+    }
+
+    // With a cache, images that were already classified by the same, unchanged network skip the forward pass
+    public IngestionPipeline(MLPNetworkOptimized network, int workers, int batchSize, PredictionCache cache) {
+        if (workers < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Workers and batch size must be positive");
+        }
+        this.network = network;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.cache = cache;
+        this.callerWorker = ThreadLocal.withInitial(() -> new Worker(1));
+    }
+
+    public Prediction predict(Path file) throws IOException {
+        Worker worker = callerWorker.get();
+        worker.preprocessor.preprocess(file, worker.batch[0]);
+        return worker.predict(file, worker.batch[0]);
+    }
+
+    public Prediction predict(BufferedImage image) {
+        Worker worker = callerWorker.get();
+        worker.preprocessor.preprocess(image, worker.batch[0]);
+        return worker.predict(null, worker.batch[0]);
+    }
+
+    // The listener is called from the worker threads and must be thread-safe. Returns the number of predicted images.
+    public int predictFolder(Path folder, Consumer<Prediction> listener) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(folder)) {
+            files = stream.filter(IngestionPipeline::isSupported).sorted().toList();
+        }
+        LOG.info("Ingesting {} images from {}", files.size(), folder);
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger predicted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> predicted.addAndGet(new Worker(batchSize).run(files, next, listener))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ingestion interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Ingestion failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("Predicted {} images in {} ms", predicted.get(), System.currentTimeMillis() - start);
+        return predicted.get();
+    }
+
+    private static boolean isSupported(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(file) && (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg"));
+    }
+
+    private class Worker {
+        private final ImagePreprocessor preprocessor = new ImagePreprocessor();
+        private final double[][] batch;
+        private final Path[] batchFiles;
+
+        Worker(int batchSize) {
+            this.batch = new double[batchSize][ImagePreprocessor.SIZE * ImagePreprocessor.SIZE];
+            this.batchFiles = new Path[batchSize];
+        }
+
+        int run(List<Path> files, AtomicInteger next, Consumer<Prediction> listener) {
+            int total = 0;
+            while (true) {
+                int filled = 0;
+                while (filled < batch.length) {
+                    int i = next.getAndIncrement();
+                    if (i >= files.size()) {
+                        break;
+                    }
+                    try {
+                        preprocessor.preprocess(files.get(i), batch[filled]);
+                        batchFiles[filled] = files.get(i);
+                        filled++;
+                    } catch (IOException e) {
+                        LOG.warn("Skipping {}: {}", files.get(i), e.getMessage());
+                    }
+                }
+                for (int i = 0; i < filled; i++) {
+                    listener.accept(predict(batchFiles[i], batch[i]));
+                }
+                total += filled;
+                if (filled < batch.length) {
+                    return total;
+                }
+            }
+        }
+
+        Prediction predict(Path file, double[] input) {
+            double[] output = cache == null ? network.predict(input) : cache.predict(network, input);
+            int label = MathUtil.argmax(output);
+            return new Prediction(file, label, output[label]);
+        }
+    }
+}
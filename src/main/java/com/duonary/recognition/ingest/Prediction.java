@@ -0,0 +1,6 @@
+package com.duonary.recognition.ingest;
+
+import java.nio.file.Path;
+
+public record Prediction(Path file, int label, double confidence) {
+}
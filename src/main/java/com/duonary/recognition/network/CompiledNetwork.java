@@ -0,0 +1,151 @@
+package com.duonary.recognition.network;
+
+import com.duonary.recognition.util.MathUtil;
+
+import java.util.Random;
+
+// Inference-only snapshot of a trained network with its shape fixed at compile time. Every buffer is sized once
+// per thread, the bias is the accumulators' starting value and ReLU runs right after the last accumulation. Each
+// layer compacts the indices of its non-zero inputs and then adds eight weight rows per pass over the outputs, so
+// the accumulators are loaded and stored an eighth as often as in MLPNetworkOptimized.predict. Weights stay one
+// array per row: HotSpot vectorizes row[k] but not flat[offset + k]. Compile again after further training.
+public class CompiledNetwork {
+
+    private static final int PROBES = 16;
+    private static final double TOLERANCE = 1e-9;
+
+    private final int[] sizes;
+    private final double[][][] weight;
+    private final double[][] bias;
+    private final ThreadLocal<Scratch> scratch;
+
+    private CompiledNetwork(double[][][] weight, double[][] bias) {
+        this.weight = weight;
+        this.bias = bias;
+        this.sizes = new int[weight.length + 1];
+        int widest = 0;
+        for (int i = 0; i < weight.length; i++) {
+            sizes[i] = weight[i].length;
+            sizes[i + 1] = bias[i].length;
+            widest = Math.max(widest, sizes[i]);
+        }
+        int maxRows = widest;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(sizes, maxRows));
+    }
+
+    // The kernel sums in a different order than predict, so the copy is checked against it on random sparse inputs
+    public static CompiledNetwork compile(MLPNetworkOptimized network) {
+        double[][][] w = network.getWeight();
+        double[][] b = network.getBias();
+        double[][][] weight = new double[w.length][][];
+        double[][] bias = new double[b.length][];
+        for (int i = 0; i < w.length; i++) {
+            weight[i] = new double[w[i].length][];
+            for (int j = 0; j < w[i].length; j++) {
+                weight[i][j] = w[i][j].clone();
+            }
+            bias[i] = b[i].clone();
+        }
+        CompiledNetwork compiled = new CompiledNetwork(weight, bias);
+        compiled.verify(network);
+        return compiled;
+    }
+
+    private void verify(MLPNetworkOptimized network) {
+        Random random = new Random(0);
+        double[] input = new double[sizes[0]];
+        for (int probe = 0; probe < PROBES; probe++) {
+            for (int j = 0; j < input.length; j++) {
+                input[j] = random.nextInt(4) == 0 ? random.nextDouble() : 0;
+            }
+            double[] expected = network.predict(input);
+            double[] actual = predict(input);
+            for (int k = 0; k < expected.length; k++) {
+                if (Math.abs(expected[k] - actual[k]) > TOLERANCE) {
+                    throw new IllegalStateException("Compiled network differs from predict at output " + k + ": "
+                            + actual[k] + " instead of " + expected[k]);
+                }
+            }
+        }
+    }
+
+    public double[] predict(double[] input) {
+        if (input.length != sizes[0]) {
+            throw new IllegalArgumentException("Expected " + sizes[0] + " inputs but got " + input.length);
+        }
+        Scratch s = scratch.get();
+        int last = weight.length - 1;
+        double[] x = input;
+        for (int i = 0; i < last; i++) {
+            layer(weight[i], bias[i], x, s.activations[i], s.nonZero, true);
+            x = s.activations[i];
+        }
+        double[] output = new double[sizes[last + 1]];
+        layer(weight[last], bias[last], x, output, s.nonZero, false);
+        return MathUtil.softmax(output);
+    }
+
+    public int predictClass(double[] input) {
+        return MathUtil.argmax(predict(input));
+    }
+
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+
+    private static void layer(double[][] w, double[] b, double[] in, double[] out, int[] nonZero, boolean relu) {
+        int n = 0;
+        for (int j = 0; j < in.length; j++) {
+            nonZero[n] = j;
+            n += in[j] != 0 ? 1 : 0;
+        }
+        System.arraycopy(b, 0, out, 0, out.length);
+        int p = 0;
+        for (; p + 7 < n; p += 8) {
+            int j0 = nonZero[p], j1 = nonZero[p + 1], j2 = nonZero[p + 2], j3 = nonZero[p + 3];
+            int j4 = nonZero[p + 4], j5 = nonZero[p + 5], j6 = nonZero[p + 6], j7 = nonZero[p + 7];
+            double x0 = in[j0], x1 = in[j1], x2 = in[j2], x3 = in[j3];
+            double x4 = in[j4], x5 = in[j5], x6 = in[j6], x7 = in[j7];
+            double[] r0 = w[j0], r1 = w[j1], r2 = w[j2], r3 = w[j3];
+            double[] r4 = w[j4], r5 = w[j5], r6 = w[j6], r7 = w[j7];
+            for (int k = 0; k < out.length; k++) {
+                out[k] += x0 * r0[k] + x1 * r1[k] + x2 * r2[k] + x3 * r3[k]
+                        + x4 * r4[k] + x5 * r5[k] + x6 * r6[k] + x7 * r7[k];
+            }
+        }
+        if (p + 3 < n) {
+            int j0 = nonZero[p], j1 = nonZero[p + 1], j2 = nonZero[p + 2], j3 = nonZero[p + 3];
+            double x0 = in[j0], x1 = in[j1], x2 = in[j2], x3 = in[j3];
+            double[] r0 = w[j0], r1 = w[j1], r2 = w[j2], r3 = w[j3];
+            for (int k = 0; k < out.length; k++) {
+                out[k] += x0 * r0[k] + x1 * r1[k] + x2 * r2[k] + x3 * r3[k];
+            }
+            p += 4;
+        }
+        for (; p < n; p++) {
+            double x = in[nonZero[p]];
+            double[] row = w[nonZero[p]];
+            for (int k = 0; k < out.length; k++) {
+                out[k] += x * row[k];
+            }
+        }
+        if (relu) {
+            for (int k = 0; k < out.length; k++) {
+                out[k] = MathUtil.relu(out[k]);
+            }
+        }
+    }
+
+    private static class Scratch {
+        private final int[] nonZero;
+        private final double[][] activations;
+
+        Scratch(int[] sizes, int maxRows) {
+            this.nonZero = new int[maxRows];
+            this.activations = new double[sizes.length - 2][];
+            for (int i = 0; i < activations.length; i++) {
+                activations[i] = new double[sizes[i + 1]];
+            }
+        }
+    }
+}
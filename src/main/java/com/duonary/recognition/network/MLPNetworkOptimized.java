@@ -12,6 +12,7 @@ public class MLPNetworkOptimized {
     private final double learningRate;
     private final int batchSize;
     private final int epoch;
+    private final boolean verbose;
     private double[][][] inputs;
     private double[][][] outputs;
     private double[][] expectedOutputs;
@@ -19,13 +20,20 @@ public class MLPNetworkOptimized {
     private int predicted;
     private int total;
     private int index;
+    private volatile long version;
+    private boolean[][][] mask;
 
     public MLPNetworkOptimized(double[][][] weight, double[][] bias, double learningRate, int batchSize, int epoch) {
+        this(weight, bias, learningRate, batchSize, epoch, true);
+    }
+
+    public MLPNetworkOptimized(double[][][] weight, double[][] bias, double learningRate, int batchSize, int epoch, boolean verbose) {
         this.weight = weight;
         this.bias = bias;
         this.learningRate = learningRate;
         this.batchSize = batchSize;
         this.epoch = epoch;
+        this.verbose = verbose;
         this.index = 0;
         this.correct = 0;
         this.predicted = 0;
@@ -47,10 +55,12 @@ public class MLPNetworkOptimized {
         private double learningRate;
         private int batchSize;
         private int epoch;
+        private boolean verbose;
 
         public Builder(int hiddenLayerCount) {
             this.hiddenLayers = new int[hiddenLayerCount];
             this.index = 0;
+            this.verbose = true;
         }
 
         public Builder addInputLayer(int size) {
@@ -87,6 +97,11 @@ public class MLPNetworkOptimized {
             return this;
         }
 
+        public Builder setVerbose(boolean verbose) {
+            this.verbose = verbose;
+            return this;
+        }
+
         public MLPNetworkOptimized build() {
             if (index != hiddenLayers.length)
                 throw new IllegalStateException("Not all hidden layers have been added");
@@ -116,41 +131,103 @@ public class MLPNetworkOptimized {
                     bias[i][j] = MathUtil.xavier(inputLayerSize, outputLayerSize);
             }
 
-            return new MLPNetworkOptimized(weights, bias, learningRate, batchSize, epoch);
+            return new MLPNetworkOptimized(weights, bias, learningRate, batchSize, epoch, verbose);
         }
     }
 
     public void train(double[][] inputs, double[][] labels) {
         for (int i = 0; i < epoch; i++) {
-            for (int j = 0; j < inputs.length; j++) {
-                this.total = inputs.length;
-                double[] output = forwardPass(inputs[j]);
-                int currentPrediction = 0;
-                int actual = 0;
-                double max = output[0];
-                for (int k = 1; k < output.length; k++) {
-                    if (output[k] > max) {
-                        max = output[k];
-                        currentPrediction = k;
-                    }
-                    if (labels[j][k] == 1.0) {
-                        actual = k;
-                    }
+            trainEpoch(inputs, labels, i);
+        }
+    }
+
+    // Runs a single pass over the data so callers (e.g. the hyperparameter search) can interleave evaluation.
+    // The input arrays are only read, never written, so several networks may train on the same dataset concurrently.
+    public void trainEpoch(double[][] inputs, double[][] labels, int epoch) {
+        trainSamples(inputs, labels, inputs.length, epoch, inputs.length);
+        finishEpoch();
+    }
+
+    // Trains on the first count samples of a chunk of an epoch that is streamed in pieces (e.g. augmented data).
+    // The input arrays are referenced until the current batch has been back-propagated, so a chunk buffer may only
+    // be reused once count is a multiple of the batch size.
+    public void trainSamples(double[][] inputs, double[][] labels, int count, int epoch, int epochSize) {
+        this.total = epochSize;
+        for (int j = 0; j < count; j++) {
+            double[] output = forwardPass(inputs[j]);
+            int currentPrediction = 0;
+            int actual = 0;
+            double max = output[0];
+            for (int k = 1; k < output.length; k++) {
+                if (output[k] > max) {
+                    max = output[k];
+                    currentPrediction = k;
                 }
-                if (currentPrediction == actual) {
-                    this.correct++;
+                if (labels[j][k] == 1.0) {
+                    actual = k;
                 }
-                this.predicted++;
-                this.expectedOutputs[index] = labels[j];
-                index++;
-                backwardPass(i);
             }
-            this.correct = 0;
-            this.predicted = 0;
+            if (currentPrediction == actual) {
+                this.correct++;
+            }
+            this.predicted++;
+            this.expectedOutputs[index] = labels[j];
+            index++;
+            backwardPass(epoch);
+        }
+    }
+
+    public void finishEpoch() {
+        this.correct = 0;
+        this.predicted = 0;
+        if (verbose) {
             System.out.println();
         }
     }
 
+    // Drops the samples of an incomplete batch left over from earlier training, so the next sample starts a fresh
+    // batch and no references to the earlier input rows are kept. Returns the number of discarded samples.
+    public int discardPartialBatch() {
+        int discarded = index;
+        index = 0;
+        this.inputs = new double[batchSize][weight.length][];
+        this.outputs = new double[batchSize][weight.length][];
+        this.expectedOutputs = new double[batchSize][];
+        return discarded;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // Weights whose mask entry is false are zeroed and stay zero during further training; null removes the mask
+    public void setMask(boolean[][][] mask) {
+        this.mask = mask;
+        if (mask != null) {
+            for (int i = 0; i < weight.length; i++) {
+                for (int j = 0; j < weight[i].length; j++) {
+                    for (int k = 0; k < weight[i][j].length; k++) {
+                        if (!mask[i][j][k]) weight[i][j][k] = 0;
+                    }
+                }
+            }
+        }
+        version++;
+    }
+
+    double[][][] getWeight() {
+        return weight;
+    }
+
+    double[][] getBias() {
+        return bias;
+    }
+
+    // Changes whenever the weights are updated, so anything derived from the parameters can detect that it is stale
+    public long getVersion() {
+        return version;
+    }
+
     private double[] forwardPass(double[] input) {
         for (int i = 0; i < weight.length; i++) {
             this.inputs[index][i] = input;
@@ -179,7 +256,9 @@ public class MLPNetworkOptimized {
                 finalOutput[i] = this.outputs[i][this.outputs[i].length - 1];
             }
             double loss = MathUtil.crossEntropy(finalOutput, this.expectedOutputs);
-            System.out.printf("\rEpoch: %d\tLoss: %f\tTrained: %d/%d\tCorrect: %d/%d\tAccuracy: %f", epoch, loss, predicted, total, correct, total, (double) correct / predicted);
+            if (verbose) {
+                System.out.printf("\rEpoch: %d\tLoss: %f\tTrained: %d/%d\tCorrect: %d/%d\tAccuracy: %f", epoch, loss, predicted, total, correct, total, (double) correct / predicted);
+            }
             tuneParameters();
             this.inputs = new double[batchSize][weight.length][];
             this.outputs = new double[batchSize][weight.length][];
@@ -200,6 +279,7 @@ public class MLPNetworkOptimized {
         for (int i = weight.length - 1; i >= 0; i--) {
             for (int j = 0; j < weight[i].length; j++) {
                 for (int k = 0; k < weight[i][j].length; k++) {
+                    if (mask != null && !mask[i][j][k]) continue;
                     double gradientSum = 0.0;
                     for (int l = 0; l < batchSize; l++) {
                         gradientSum += delta[l][k] * inputs[l][i][j];
@@ -219,7 +299,7 @@ public class MLPNetworkOptimized {
                 for (int j = 0; j < batchSize; j++) {
                     for (int k = 0; k < weight[i].length; k++) {
                         double sum = 0.0;
-                        for (int l = 0; l < weight[i][j].length; l++) { //TODO: think about j
+                        for (int l = 0; l < weight[i][k].length; l++) {
                             sum += delta[j][l] * weight[i][k][l];
                         }
                         newDelta[j][k] = sum * MathUtil.reluDerivative(outputs[j][i-1][k]);
@@ -228,9 +308,36 @@ public class MLPNetworkOptimized {
                 delta = newDelta;
             }
         }
+        // Only after the update: a prediction that overlapped it was made under the old version and is now stale
+        version++;
     }
 
+    // Unlike forwardPass this keeps no per-batch training state, so it is safe to call from several threads.
     public double[] predict(double[] input) {
-        return forwardPass(input);
+        for (int i = 0; i < weight.length; i++) {
+            double[][] w = weight[i];
+            double[] output = bias[i].clone();
+            for (int j = 0; j < w.length; j++) {
+                double x = input[j];
+                if (x == 0) continue;
+                double[] row = w[j];
+                for (int k = 0; k < output.length; k++) {
+                    output[k] += x * row[k];
+                }
+            }
+            if (i == weight.length - 1) {
+                output = softmax(output);
+            } else {
+                for (int k = 0; k < output.length; k++) {
+                    output[k] = MathUtil.relu(output[k]);
+                }
+            }
+            input = output;
+        }
+        return input;
+    }
+
+    public int predictClass(double[] input) {
+        return MathUtil.argmax(predict(input));
     }
 }
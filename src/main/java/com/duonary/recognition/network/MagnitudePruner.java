@@ -0,0 +1,170 @@
+package com.duonary.recognition.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+// Iterative magnitude pruning: every round removes the smallest weights of each layer up to that round's sparsity,
+// then fine-tunes the remaining weights before the next round. Sparsity follows the gradual schedule of Zhu & Gupta,
+// pruning fast at first and slowly near the target while the network can still recover.
+public class MagnitudePruner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MagnitudePruner.class);
+    private static final int WARMUP_RUNS = 10;
+    private static final int TIMED_RUNS = 9;
+    private static volatile double sink;
+
+    private final double[] targetSparsity;
+    private final int rounds;
+    private final int fineTuneEpochs;
+
+    public MagnitudePruner(double[] targetSparsity, int rounds, int fineTuneEpochs) {
+        for (double sparsity : targetSparsity) {
+            if (sparsity < 0 || sparsity >= 1) {
+                throw new IllegalArgumentException("Sparsity must be in [0, 1): " + sparsity);
+            }
+        }
+        if (rounds < 1 || fineTuneEpochs < 0) {
+            throw new IllegalArgumentException("Rounds must be positive and fine tune epochs not negative");
+        }
+        this.targetSparsity = targetSparsity;
+        this.rounds = rounds;
+        this.fineTuneEpochs = fineTuneEpochs;
+    }
+
+    public record Report(int round, double[] sparsity, long denseBytes, long sparseBytes,
+                         double denseLatencyMicros, double sparseLatencyMicros, double accuracy) {
+    }
+
+    // Round 0 is the unpruned network. The network keeps the final mask, so SparseNetwork.from(network, samples)
+    // exports it.
+    public List<Report> prune(MLPNetworkOptimized network, double[][] trainInputs, double[][] trainLabels,
+                              double[][] validationInputs, double[][] validationLabels) {
+        double[][][] weight = network.getWeight();
+        if (targetSparsity.length != weight.length) {
+            throw new IllegalArgumentException("Expected a target sparsity for each of the " + weight.length + " layers");
+        }
+        boolean[][][] mask = new boolean[weight.length][][];
+        for (int i = 0; i < weight.length; i++) {
+            mask[i] = new boolean[weight[i].length][weight[i][0].length];
+        }
+
+        List<Report> reports = new ArrayList<>();
+        reports.add(report(0, network, validationInputs, validationLabels));
+        int epoch = 0;
+        for (int round = 1; round <= rounds; round++) {
+            double progress = 1.0 - (double) round / rounds;
+            for (int i = 0; i < weight.length; i++) {
+                double sparsity = targetSparsity[i] * (1.0 - progress * progress * progress);
+                updateMask(weight[i], mask[i], sparsity);
+            }
+            network.setMask(mask);
+            for (int e = 0; e < fineTuneEpochs; e++) {
+                network.trainEpoch(trainInputs, trainLabels, epoch++);
+            }
+            reports.add(report(round, network, validationInputs, validationLabels));
+        }
+        return reports;
+    }
+
+    // Prunes exactly floor(sparsity * size) weights of the layer, the smallest magnitudes first. Weights tied with
+    // the threshold are pruned in order only until that count is reached, so ties cannot overshoot the target.
+    private static void updateMask(double[][] weight, boolean[][] mask, double sparsity) {
+        int rows = weight.length;
+        int columns = weight[0].length;
+        double[] magnitudes = new double[rows * columns];
+        for (int j = 0; j < rows; j++) {
+            for (int k = 0; k < columns; k++) {
+                magnitudes[j * columns + k] = Math.abs(weight[j][k]);
+            }
+        }
+        int pruned = (int) Math.floor(sparsity * magnitudes.length);
+        if (pruned == 0) {
+            for (boolean[] row : mask) {
+                Arrays.fill(row, true);
+            }
+            return;
+        }
+        double[] sorted = magnitudes.clone();
+        Arrays.sort(sorted);
+        double threshold = sorted[pruned - 1];
+        int tiesToPrune = pruned;
+        for (double magnitude : magnitudes) {
+            if (magnitude < threshold) tiesToPrune--;
+        }
+        for (int j = 0; j < rows; j++) {
+            for (int k = 0; k < columns; k++) {
+                double magnitude = magnitudes[j * columns + k];
+                if (magnitude == threshold && tiesToPrune > 0) {
+                    mask[j][k] = false;
+                    tiesToPrune--;
+                } else {
+                    mask[j][k] = magnitude > threshold;
+                }
+            }
+        }
+    }
+
+    private static Report report(int round, MLPNetworkOptimized network, double[][] inputs, double[][] labels) {
+        SparseNetwork sparse = SparseNetwork.from(network, inputs);
+        SparseLayer[] layers = sparse.getLayers();
+        double[] sparsity = new double[layers.length];
+        long denseBytes = 0;
+        for (int i = 0; i < layers.length; i++) {
+            sparsity[i] = layers[i].getSparsity();
+            denseBytes += 8L * ((long) layers[i].getInputSize() * layers[i].getOutputSize() + layers[i].getOutputSize());
+        }
+
+        int correct = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            if (labels[i][sparse.predictClass(inputs[i])] == 1.0) {
+                correct++;
+            }
+        }
+
+        // Warm both paths up until the JIT has compiled them, then interleave the timed runs so drift such as
+        // frequency scaling hits both alike, and report the median run
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            timePredictions(network::predict, inputs);
+            timePredictions(sparse::predict, inputs);
+        }
+        double[] dense = new double[TIMED_RUNS];
+        double[] sparseRuns = new double[TIMED_RUNS];
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            dense[run] = timePredictions(network::predict, inputs);
+            sparseRuns[run] = timePredictions(sparse::predict, inputs);
+        }
+        double denseLatency = median(dense) / 1000.0 / inputs.length;
+        double sparseLatency = median(sparseRuns) / 1000.0 / inputs.length;
+
+        Report report = new Report(round, sparsity, denseBytes, sparse.getSizeInBytes(), denseLatency, sparseLatency,
+                (double) correct / inputs.length);
+        LOG.info("Round: {}\tSparsity: {}\tSize: {} -> {} bytes\tLatency: {} -> {} us\tAccuracy: {}",
+                round, Arrays.toString(sparsity), denseBytes, report.sparseBytes(),
+                String.format("%.2f", denseLatency), String.format("%.2f", sparseLatency), report.accuracy());
+        return report;
+    }
+
+    // Returns the elapsed nanoseconds. The outputs go to a volatile sink so the JIT cannot drop the calls.
+    private static long timePredictions(UnaryOperator<double[]> predictor, double[][] inputs) {
+        double checksum = 0;
+        long start = System.nanoTime();
+        for (double[] input : inputs) {
+            checksum += predictor.apply(input)[0];
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = checksum;
+        return elapsed;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
@@ -0,0 +1,96 @@
+package com.duonary.recognition.network;
+
+// Compressed sparse row copy of one weight matrix in one of two orientations. Output-major rows hold the incoming
+// weights of one output neuron, so the kernel is a gather dot product per output with no scattered stores, but it
+// reads every weight. Input-major rows hold the outgoing weights of one input, so the kernel skips the whole row of
+// a zero input, which pays off for inputs that are mostly zero such as background pixels or inactive ReLUs.
+public class SparseLayer {
+    private final int inputSize;
+    private final int outputSize;
+    private final boolean inputMajor;
+    private final int[] rowPointers;
+    private final int[] columnIndices;
+    private final double[] values;
+    private final double[] bias;
+
+    // weight[j][k] connects input j to output k, as in MLPNetworkOptimized
+    public SparseLayer(double[][] weight, double[] bias, boolean inputMajor) {
+        this.inputSize = weight.length;
+        this.outputSize = bias.length;
+        this.inputMajor = inputMajor;
+        int nonZero = 0;
+        for (double[] row : weight) {
+            for (double value : row) {
+                if (value != 0) nonZero++;
+            }
+        }
+        int rows = inputMajor ? inputSize : outputSize;
+        int columns = inputMajor ? outputSize : inputSize;
+        this.rowPointers = new int[rows + 1];
+        this.columnIndices = new int[nonZero];
+        this.values = new double[nonZero];
+        int p = 0;
+        for (int r = 0; r < rows; r++) {
+            rowPointers[r] = p;
+            for (int c = 0; c < columns; c++) {
+                double value = inputMajor ? weight[r][c] : weight[c][r];
+                if (value != 0) {
+                    columnIndices[p] = c;
+                    values[p] = value;
+                    p++;
+                }
+            }
+        }
+        rowPointers[rows] = p;
+        this.bias = bias.clone();
+    }
+
+    // output = bias + W^T * input
+    public void multiply(double[] input, double[] output) {
+        int[] columnIndices = this.columnIndices;
+        double[] values = this.values;
+        if (inputMajor) {
+            System.arraycopy(bias, 0, output, 0, outputSize);
+            for (int j = 0; j < inputSize; j++) {
+                double x = input[j];
+                if (x == 0) continue;
+                for (int p = rowPointers[j], end = rowPointers[j + 1]; p < end; p++) {
+                    output[columnIndices[p]] += x * values[p];
+                }
+            }
+            return;
+        }
+        int p = 0;
+        for (int k = 0; k < outputSize; k++) {
+            double sum = bias[k];
+            for (int end = rowPointers[k + 1]; p < end; p++) {
+                sum += values[p] * input[columnIndices[p]];
+            }
+            output[k] = sum;
+        }
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public boolean isInputMajor() {
+        return inputMajor;
+    }
+
+    public int getNonZeroCount() {
+        return values.length;
+    }
+
+    public double getSparsity() {
+        return 1.0 - (double) values.length / ((long) inputSize * outputSize);
+    }
+
+    public long getSizeInBytes() {
+        return 8L * values.length + 4L * columnIndices.length + 4L * rowPointers.length + 8L * bias.length;
+    }
+}
@@ -0,0 +1,90 @@
+package com.duonary.recognition.network;
+
+import com.duonary.recognition.util.MathUtil;
+
+// Inference-only copy of a (pruned) MLPNetworkOptimized with every layer stored in CSR form
+public class SparseNetwork {
+    // A scattered update costs more than a gathered one, so input-major only pays off when enough inputs are skipped
+    private static final double MIN_ZERO_SHARE = 0.5;
+
+    private final SparseLayer[] layers;
+
+    public SparseNetwork(SparseLayer[] layers) {
+        this.layers = layers;
+    }
+
+    // Without samples only the first layer is input-major: background pixels are mostly zero, hidden ReLU outputs
+    // usually are not
+    public static SparseNetwork from(MLPNetworkOptimized network) {
+        return from(network, null);
+    }
+
+    // Picks each layer's orientation from the share of its inputs that are zero when the samples are run through
+    public static SparseNetwork from(MLPNetworkOptimized network, double[][] samples) {
+        double[][][] weight = network.getWeight();
+        double[][] bias = network.getBias();
+        SparseLayer[] layers = new SparseLayer[weight.length];
+        double[][] activations = samples;
+        for (int i = 0; i < weight.length; i++) {
+            boolean inputMajor = activations == null ? i == 0 : zeroShare(activations) >= MIN_ZERO_SHARE;
+            layers[i] = new SparseLayer(weight[i], bias[i], inputMajor);
+            if (activations != null && i < weight.length - 1) {
+                double[][] next = new double[activations.length][layers[i].getOutputSize()];
+                for (int n = 0; n < activations.length; n++) {
+                    layers[i].multiply(activations[n], next[n]);
+                    relu(next[n]);
+                }
+                activations = next;
+            }
+        }
+        return new SparseNetwork(layers);
+    }
+
+    private static double zeroShare(double[][] activations) {
+        long zeros = 0;
+        long total = 0;
+        for (double[] activation : activations) {
+            for (double value : activation) {
+                if (value == 0) zeros++;
+            }
+            total += activation.length;
+        }
+        return total == 0 ? 1.0 : (double) zeros / total;
+    }
+
+    public double[] predict(double[] input) {
+        for (int i = 0; i < layers.length; i++) {
+            double[] output = new double[layers[i].getOutputSize()];
+            layers[i].multiply(input, output);
+            if (i == layers.length - 1) {
+                output = MathUtil.softmax(output);
+            } else {
+                relu(output);
+            }
+            input = output;
+        }
+        return input;
+    }
+
+    private static void relu(double[] values) {
+        for (int k = 0; k < values.length; k++) {
+            values[k] = MathUtil.relu(values[k]);
+        }
+    }
+
+    public int predictClass(double[] input) {
+        return MathUtil.argmax(predict(input));
+    }
+
+    public SparseLayer[] getLayers() {
+        return layers;
+    }
+
+    public long getSizeInBytes() {
+        long size = 0;
+        for (SparseLayer layer : layers) {
+            size += layer.getSizeInBytes();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,365 @@
+package com.duonary.recognition.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Asynchronous successive halving (ASHA): every config starts with the minimum epoch budget and only the top
+// 1/reductionFactor of each rung is trained further, without workers waiting for a rung to fill up.
+public class HyperparameterSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HyperparameterSearch.class);
+
+    private final int inputLayerSize;
+    private final int outputLayerSize;
+    private final int hiddenLayerCount;
+    private final int[] hiddenLayerWidths;
+    private final double minLearningRate;
+    private final double maxLearningRate;
+    private final int[] batchSizes;
+    private final int minEpoch;
+    private final int maxEpoch;
+    private final int reductionFactor;
+    private final int configCount;
+    private final int workers;
+    private final long seed;
+    private final double targetAccuracy;
+
+    private final Object lock = new Object();
+    private final List<List<RungEntry>> rungs = new ArrayList<>();
+    private final List<Trial> trials = new ArrayList<>();
+    private List<SearchConfig> configs;
+    private int running;
+    private boolean failed;
+    private long startNanos;
+
+    // A trial's accuracy when it finished a rung; later rungs must not change its rank in this one
+    private record RungEntry(Trial trial, double accuracy) {
+    }
+
+    private HyperparameterSearch(Builder builder) {
+        this.inputLayerSize = builder.inputLayerSize;
+        this.outputLayerSize = builder.outputLayerSize;
+        this.hiddenLayerCount = builder.hiddenLayerCount;
+        this.hiddenLayerWidths = builder.hiddenLayerWidths;
+        this.minLearningRate = builder.minLearningRate;
+        this.maxLearningRate = builder.maxLearningRate;
+        this.batchSizes = builder.batchSizes;
+        this.minEpoch = builder.minEpoch;
+        this.maxEpoch = builder.maxEpoch;
+        this.reductionFactor = builder.reductionFactor;
+        this.configCount = builder.configCount;
+        this.workers = builder.workers;
+        this.seed = builder.seed;
+        this.targetAccuracy = builder.targetAccuracy;
+    }
+
+    public static HyperparameterSearch.Builder builder(int hiddenLayerCount) {
+        return new HyperparameterSearch.Builder(hiddenLayerCount);
+    }
+
+    public static class Builder {
+        private final int hiddenLayerCount;
+        private int inputLayerSize;
+        private int outputLayerSize;
+        private int[] hiddenLayerWidths;
+        private double minLearningRate;
+        private double maxLearningRate;
+        private int[] batchSizes;
+        private int minEpoch;
+        private int maxEpoch;
+        private int reductionFactor;
+        private int configCount;
+        private int workers;
+        private long seed;
+        private double targetAccuracy;
+
+        public Builder(int hiddenLayerCount) {
+            this.hiddenLayerCount = hiddenLayerCount;
+            this.minEpoch = 1;
+            this.maxEpoch = 20;
+            this.reductionFactor = 3;
+            this.configCount = 100;
+            this.workers = Runtime.getRuntime().availableProcessors();
+            this.seed = System.nanoTime();
+            this.targetAccuracy = 0.9;
+        }
+
+        public Builder addInputLayer(int size) {
+            this.inputLayerSize = size;
+            return this;
+        }
+
+        public Builder addOutputLayer(int size) {
+            this.outputLayerSize = size;
+            return this;
+        }
+
+        public Builder setHiddenLayerWidths(int... widths) {
+            this.hiddenLayerWidths = widths;
+            return this;
+        }
+
+        // Sampled log-uniformly, since useful learning rates span several orders of magnitude
+        public Builder setLearningRateRange(double min, double max) {
+            this.minLearningRate = min;
+            this.maxLearningRate = max;
+            return this;
+        }
+
+        public Builder setBatchSizes(int... batchSizes) {
+            this.batchSizes = batchSizes;
+            return this;
+        }
+
+        // min is the budget of the first rung, max the budget of the configs that survive every halving
+        public Builder setEpochRange(int min, int max) {
+            this.minEpoch = min;
+            this.maxEpoch = max;
+            return this;
+        }
+
+        public Builder setReductionFactor(int reductionFactor) {
+            this.reductionFactor = reductionFactor;
+            return this;
+        }
+
+        public Builder setConfigCount(int configCount) {
+            this.configCount = configCount;
+            return this;
+        }
+
+        public Builder setWorkers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder setTargetAccuracy(double targetAccuracy) {
+            this.targetAccuracy = targetAccuracy;
+            return this;
+        }
+
+        public HyperparameterSearch build() {
+            if (hiddenLayerCount < 1 || hiddenLayerWidths == null || hiddenLayerWidths.length == 0)
+                throw new IllegalStateException("Hidden layer widths have not been set");
+            if (batchSizes == null || batchSizes.length == 0)
+                throw new IllegalStateException("Batch sizes have not been set");
+            if (minLearningRate <= 0 || maxLearningRate < minLearningRate)
+                throw new IllegalStateException("Invalid learning rate range");
+            if (minEpoch < 1 || maxEpoch < minEpoch)
+                throw new IllegalStateException("Invalid epoch range");
+            if (reductionFactor < 2)
+                throw new IllegalStateException("Reduction factor must be at least 2");
+            if (configCount < 1 || workers < 1)
+                throw new IllegalStateException("Config count and workers must be positive");
+            return new HyperparameterSearch(this);
+        }
+    }
+
+    // All trials read the same training and validation arrays; nothing is copied per config.
+    public List<TrialResult> run(double[][] trainInputs, double[][] trainLabels,
+                                 double[][] validationInputs, double[][] validationLabels) {
+        synchronized (lock) {
+            this.configs = sampleConfigs();
+            this.rungs.clear();
+            this.trials.clear();
+            this.running = 0;
+            this.failed = false;
+            this.startNanos = System.nanoTime();
+        }
+        LOG.info("Searching {} configs on {} workers, epochs {}..{}, reduction factor {}",
+                configCount, workers, minEpoch, maxEpoch, reductionFactor);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> work(trainInputs, trainLabels, validationInputs, validationLabels)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<TrialResult> leaderboard = leaderboard();
+        LOG.info("Search completed in {} ms", (System.nanoTime() - startNanos) / 1_000_000);
+        return leaderboard;
+    }
+
+    public static void logLeaderboard(List<TrialResult> leaderboard, int top) {
+        for (int i = 0; i < Math.min(top, leaderboard.size()); i++) {
+            TrialResult result = leaderboard.get(i);
+            LOG.info("#{}\tTrial: {}\tAccuracy: {}\tEpochs: {}\tTraining: {} ms\tEvaluation: {} ms\tTime to target: {}\t{}",
+                    i + 1, result.id(), result.accuracy(), result.epochs(), result.trainingMillis(),
+                    result.evaluationMillis(), result.reachedTarget() ? result.timeToTargetMillis() + " ms" : "-", result.config());
+        }
+    }
+
+    private List<SearchConfig> sampleConfigs() {
+        Random random = new Random(seed);
+        double logMin = Math.log(minLearningRate);
+        double logMax = Math.log(maxLearningRate);
+        List<SearchConfig> sampled = new ArrayList<>(configCount);
+        for (int i = 0; i < configCount; i++) {
+            double learningRate = Math.exp(logMin + random.nextDouble() * (logMax - logMin));
+            int batchSize = batchSizes[random.nextInt(batchSizes.length)];
+            int[] hiddenLayers = new int[hiddenLayerCount];
+            for (int j = 0; j < hiddenLayerCount; j++) {
+                hiddenLayers[j] = hiddenLayerWidths[random.nextInt(hiddenLayerWidths.length)];
+            }
+            sampled.add(new SearchConfig(learningRate, batchSize, hiddenLayers));
+        }
+        return sampled;
+    }
+
+    private int rungEpochs(int rung) {
+        long epochs = minEpoch;
+        for (int i = 0; i < rung && epochs < maxEpoch; i++) {
+            epochs *= reductionFactor;
+        }
+        return (int) Math.min(epochs, maxEpoch);
+    }
+
+    private void work(double[][] trainInputs, double[][] trainLabels,
+                      double[][] validationInputs, double[][] validationLabels) {
+        Trial trial;
+        while ((trial = nextTrial()) != null) {
+            double accuracy = Double.NaN;
+            boolean completed = false;
+            try {
+                int targetEpochs = rungEpochs(trial.rung + 1);
+                while (trial.epochsTrained < targetEpochs) {
+                    long start = System.nanoTime();
+                    trial.network.trainEpoch(trainInputs, trainLabels, trial.epochsTrained);
+                    trial.trainingNanos += System.nanoTime() - start;
+                    trial.epochsTrained++;
+                    // Until the target is reached every epoch is evaluated, so time-to-target is exact to the epoch.
+                    // Evaluation is timed apart, so the validation set size does not skew the training times.
+                    if (trial.timeToTargetNanos < 0 || trial.epochsTrained == targetEpochs) {
+                        start = System.nanoTime();
+                        accuracy = evaluate(trial, validationInputs, validationLabels);
+                        trial.evaluationNanos += System.nanoTime() - start;
+                        if (trial.timeToTargetNanos < 0 && accuracy >= targetAccuracy) {
+                            trial.timeToTargetNanos = trial.trainingNanos;
+                        }
+                    }
+                }
+                completed = true;
+            } finally {
+                complete(trial, accuracy, completed);
+            }
+        }
+    }
+
+    private Trial nextTrial() {
+        synchronized (lock) {
+            while (!failed) {
+                Trial trial = promotable();
+                if (trial == null && trials.size() < configs.size()) {
+                    int id = trials.size();
+                    trial = new Trial(id, configs.get(id), configs.get(id).build(inputLayerSize, outputLayerSize, maxEpoch));
+                    trials.add(trial);
+                }
+                if (trial != null) {
+                    trial.running = true;
+                    running++;
+                    return trial;
+                }
+                if (running == 0) {
+                    return null;
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Highest rung first, so promising configs reach the full budget as early as possible.
+    private Trial promotable() {
+        for (int rung = rungs.size() - 1; rung >= 0; rung--) {
+            if (rungEpochs(rung) >= maxEpoch) {
+                continue;
+            }
+            List<RungEntry> ranked = new ArrayList<>(rungs.get(rung));
+            ranked.sort(Comparator.comparingDouble(RungEntry::accuracy).reversed());
+            int survivors = ranked.size() / reductionFactor;
+            for (int i = 0; i < survivors; i++) {
+                Trial trial = ranked.get(i).trial();
+                if (trial.rung == rung && !trial.running) {
+                    return trial;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void complete(Trial trial, double accuracy, boolean completed) {
+        synchronized (lock) {
+            running--;
+            trial.running = false;
+            if (!completed) {
+                failed = true;
+            } else {
+                trial.rung++;
+                trial.accuracy = accuracy;
+                while (rungs.size() <= trial.rung) {
+                    rungs.add(new ArrayList<>());
+                }
+                rungs.get(trial.rung).add(new RungEntry(trial, accuracy));
+                LOG.debug("Trial {} finished rung {} ({} epochs) with accuracy {}",
+                        trial.id, trial.rung, trial.epochsTrained, accuracy);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private static double evaluate(Trial trial, double[][] inputs, double[][] labels) {
+        int correct = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            int predicted = trial.network.predictClass(inputs[i]);
+            if (labels[i][predicted] == 1.0) {
+                correct++;
+            }
+        }
+        return (double) correct / inputs.length;
+    }
+
+    private List<TrialResult> leaderboard() {
+        synchronized (lock) {
+            List<TrialResult> results = new ArrayList<>();
+            for (Trial trial : trials) {
+                if (trial.rung >= 0) {
+                    results.add(trial.toResult());
+                }
+            }
+            results.sort(Comparator.comparingInt(TrialResult::epochs).reversed()
+                    .thenComparing(Comparator.comparingDouble(TrialResult::accuracy).reversed()));
+            return results;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.duonary.recognition.search;
+
+import com.duonary.recognition.network.MLPNetworkOptimized;
+
+import java.util.Arrays;
+
+public record SearchConfig(double learningRate, int batchSize, int[] hiddenLayers) {
+
+    public MLPNetworkOptimized build(int inputLayerSize, int outputLayerSize, int maxEpoch) {
+        MLPNetworkOptimized.Builder builder = MLPNetworkOptimized.builder(hiddenLayers.length)
+                .addInputLayer(inputLayerSize)
+                .addOutputLayer(outputLayerSize)
+                .setLearningRate(learningRate)
+                .setBatchSize(batchSize)
+                .setEpoch(maxEpoch)
+                .setVerbose(false);
+        for (int hiddenLayer : hiddenLayers) {
+            builder.addHiddenLayer(hiddenLayer);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("lr=%.5f batch=%d hidden=%s", learningRate, batchSize, Arrays.toString(hiddenLayers));
+    }
+}
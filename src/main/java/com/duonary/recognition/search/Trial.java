@@ -0,0 +1,35 @@
+package com.duonary.recognition.search;
+
+import com.duonary.recognition.network.MLPNetworkOptimized;
+
+class Trial {
+    final int id;
+    final SearchConfig config;
+    final MLPNetworkOptimized network;
+    int rung;
+    boolean running;
+    int epochsTrained;
+    double accuracy;
+    long trainingNanos;
+    long evaluationNanos;
+    long timeToTargetNanos;
+
+    Trial(int id, SearchConfig config, MLPNetworkOptimized network) {
+        this.id = id;
+        this.config = config;
+        this.network = network;
+        this.rung = -1;
+        this.running = false;
+        this.epochsTrained = 0;
+        this.accuracy = Double.NaN;
+        this.trainingNanos = 0;
+        this.evaluationNanos = 0;
+        this.timeToTargetNanos = -1;
+    }
+
+    TrialResult toResult() {
+        long timeToTarget = timeToTargetNanos < 0 ? -1 : timeToTargetNanos / 1_000_000;
+        return new TrialResult(id, config, epochsTrained, accuracy, trainingNanos / 1_000_000,
+                evaluationNanos / 1_000_000, timeToTarget);
+    }
+}
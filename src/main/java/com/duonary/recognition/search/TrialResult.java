@@ -0,0 +1,10 @@
+package com.duonary.recognition.search;
+
+// Training and time-to-target count only the training epochs; validation passes are in evaluationMillis
+public record TrialResult(int id, SearchConfig config, int epochs, double accuracy, long trainingMillis,
+                          long evaluationMillis, long timeToTargetMillis) {
+
+    public boolean reachedTarget() {
+        return timeToTargetMillis >= 0;
+    }
+}
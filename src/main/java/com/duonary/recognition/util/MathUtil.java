@@ -44,6 +44,17 @@ public class MathUtil {
         return result;
     }
 
+    // Index of the largest value, the first one on ties
+    public static int argmax(double[] x) {
+        int index = 0;
+        for (int i = 1; i < x.length; i++) {
+            if (x[i] > x[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
     public static double crossEntropy(double[][] actual, double[][] expected) {
         double loss = 0;
         for (int i = 0; i < actual.length; i++) {